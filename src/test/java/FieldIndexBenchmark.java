@@ -0,0 +1,121 @@
+import com.github.draju.rcsel.RedcapFieldIndex;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+
+/**
+ * Microbenchmark comparing the old checkbox matching of enterForm, which rescans the record's value list
+ * and rebuilds the lookup name for every checkbox, with the RedcapFieldIndex lookup done by fillDataCell.
+ * Simulates a 1000-choice checkbox field with half its choices checked.
+ * The browser is not involved, so this measures the Java side only.  Dropdowns are not benchmarked:
+ * their gain is in WebDriver calls, since fillDataCell no longer reads every option, which cannot be timed without a browser.
+ *
+ * Run after mvn test-compile with: java -cp target/test-classes FieldIndexBenchmark
+ */
+public class FieldIndexBenchmark {
+
+  private static final int NUM_OPTIONS = 1000;
+  private static final int WARMUP_ROUNDS = 200;
+  private static final int ROUNDS = 1000;
+
+  private static final String CHECKBOX_NAME = RedcapFieldIndex.CHECKBOX_PREFIX + "big_checkbox";
+
+  //Simulated DOM: code attribute of every checkbox
+  private static String[] checkboxCodes;
+
+  public static void main(String[] args){
+    Map<String, List<String>> recSet = new HashMap<String, List<String>>();
+    List<String> checkedValues = new ArrayList<String>();
+    for(int i=0; i < NUM_OPTIONS; i+=2){
+      checkedValues.add(""+i);
+    }
+    recSet.put("big_checkbox", checkedValues);
+    for(int i=0; i < 200; i++){
+      List<String> values = new ArrayList<String>();
+      values.add("value"+i);
+      recSet.put("field_"+i, values);
+    }
+
+    checkboxCodes = new String[NUM_OPTIONS];
+    for(int i=0; i < NUM_OPTIONS; i++){
+      checkboxCodes[i] = ""+i;
+    }
+
+    RedcapFieldIndex index = new RedcapFieldIndex(recSet);
+    check("checkbox", checkboxWithList(recSet), checkboxWithIndex(index));
+
+    for(int i=0; i < WARMUP_ROUNDS; i++){
+      checkboxWithList(recSet);
+      checkboxWithIndex(index);
+    }
+
+    System.out.println("1000-choice checkbox; both paths read each checkbox's code, so WebDriver calls are the same:");
+    report("  List scan", recSet, null);
+    report("  Index    ", null, index);
+  }
+
+  //Old checkbox path: strip __chkn__ and scan the field's values for every checkbox
+  private static int checkboxWithList(Map<String, List<String>> recSet){
+    int matches = 0;
+    for(int i=0; i < checkboxCodes.length; i++){
+      List<String> values = recSet.get(CHECKBOX_NAME.replace(RedcapFieldIndex.CHECKBOX_PREFIX, ""));
+      if(values != null){
+        for(String value : values){
+          if(value != null && value.equals(checkboxCodes[i])){
+            matches++;
+            break;
+          }
+        }
+      }
+    }
+    return matches;
+  }
+
+  //New checkbox path: constant-time set lookup by DOM name
+  private static int checkboxWithIndex(RedcapFieldIndex index){
+    int matches = 0;
+    for(int i=0; i < checkboxCodes.length; i++){
+      if(index.contains(CHECKBOX_NAME, checkboxCodes[i])){
+        matches++;
+      }
+    }
+    return matches;
+  }
+
+  private static void check(String label, int oldMatches, int newMatches){
+    System.out.println("Matches per "+label+": list scan="+oldMatches+"; index="+newMatches);
+    if(oldMatches != newMatches){
+      throw new IllegalStateException("List scan and index disagree on "+label+" matches");
+    }
+  }
+
+  private static void report(String label, Map<String, List<String>> recSet, RedcapFieldIndex index){
+    long allocBefore = getAllocatedBytes();
+    long start = System.nanoTime();
+    int matches = 0;
+    for(int i=0; i < ROUNDS; i++){
+      matches += (index == null) ? checkboxWithList(recSet) : checkboxWithIndex(index);
+    }
+    long elapsed = System.nanoTime() - start;
+    long allocated = getAllocatedBytes() - allocBefore;
+    System.out.println(label+": "+(elapsed / ROUNDS)+" ns per field; "
+      +(allocBefore < 0 ? "allocation n/a" : (allocated / ROUNDS)+" bytes allocated per field")
+      +" (matches="+matches+")");
+  }
+
+  //Bytes allocated by this thread so far, or -1 if the JVM does not report it
+  private static long getAllocatedBytes(){
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if(bean instanceof com.sun.management.ThreadMXBean){
+      return ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return -1;
+  }
+}
@@ -1,4 +1,5 @@
 import com.github.draju.rcsel.RedcapTestUtil;
+import com.github.draju.rcsel.RedcapTimingUtil;
 
 import org.openqa.selenium.By;
 import org.openqa.selenium.WebDriver;
@@ -14,6 +15,7 @@ import org.testng.annotations.Parameters;
 import org.testng.annotations.Test;
 
 import java.util.Date;
+import java.util.List;
 import java.text.SimpleDateFormat;
 
 
@@ -93,12 +95,13 @@ public class MyFirstInstrumentTest {
 
     System.out.println("----------- Executing verifyProjectPage");
 
-    RedcapTestUtil.clickOnLink(project_title);
+    RedcapTestUtil.clickOnLink(project_title, true);
     //Wait if necessary for project page to load
     new WebDriverWait(driver, 5).until(ExpectedConditions.urlContains(RedcapTestUtil.REDCAP_VERSION+"/ProjectSetup/index.php?pid="+pid));    
     String actualTitle = driver.getTitle();
     System.out.println("Page title = "+actualTitle);
     Assert.assertTrue(actualTitle.contains(project_title));
+    RedcapTimingUtil.capturePageTiming("projectPage", "");
 
   }
 
@@ -116,6 +119,7 @@ public class MyFirstInstrumentTest {
     String expectedPage = "page="+form_name.toLowerCase().replaceAll(" ", "_");
     //System.out.println("currentUrl="+currentUrl+";  expectedPage="+expectedPage);
     Assert.assertTrue(currentUrl.contains(expectedPage));
+    RedcapTimingUtil.capturePageTiming("dataEntryForm", form_name);
   
   }
 
@@ -134,6 +138,8 @@ public class MyFirstInstrumentTest {
       System.out.println("Form '"+form_name+"' entered for Record #"+newRecNum+" at "+deTimeStamp);
     }
     Assert.assertTrue(newRecNum > 0);
+    //Saving returns to the record home page (or event grid), so this captures both the save and the page it lands on
+    RedcapTimingUtil.capturePageTiming("saveForm", form_name);
   }
  
   /**
@@ -150,6 +156,64 @@ public class MyFirstInstrumentTest {
     Assert.assertTrue(logEventID > 0);
   }
 
+  /**
+   * Opens the record home page of the record that was just entered
+   */
+  @Parameters({ "pid" })
+  @Test(priority = 6)
+  public void verifyRecordHome(int pid){
+
+    System.out.println("----------- Executing verifyRecordHome");
+
+    RedcapTestUtil.openRecordHome(pid, newRecNum);
+    String currentUrl = driver.getCurrentUrl();
+    Assert.assertTrue(currentUrl.contains("record_home.php") && currentUrl.contains("id="+newRecNum));
+    RedcapTimingUtil.capturePageTiming("recordHome", "");
+  }
+
+  /**
+   * Reopens the project page, data entry form and record home page timing_samples times,
+   * so each gated page has enough timing samples for a meaningful p95
+   */
+  @Parameters({ "pid", "event_id", "form_name", "timing_samples"})
+  @Test(priority = 7)
+  public void collectPageTimings(int pid, int event_id, String form_name, int timing_samples){
+
+    System.out.println("----------- Executing collectPageTimings");
+
+    for(int i=0; i < timing_samples; i++){
+      RedcapTestUtil.openProjectPage(pid);
+      RedcapTimingUtil.capturePageTiming("projectPage", "");
+      RedcapTestUtil.openDataEntryForm(driver, pid, newRecNum, event_id, form_name);
+      RedcapTimingUtil.capturePageTiming("dataEntryForm", form_name);
+      RedcapTestUtil.openRecordHome(pid, newRecNum);
+      RedcapTimingUtil.capturePageTiming("recordHome", "");
+    }
+    Assert.assertTrue(driver.getCurrentUrl().contains("record_home.php"));
+  }
+
+  /**
+   * Fails if p95 page timings captured during this run regress past the threshold against the stored baseline.
+   * With -Dtiming.updateBaseline=true the timings are added to the baseline instead of checked against it.
+   */
+  @Parameters({ "timing_baseline", "timing_threshold_pct"})
+  @Test(priority = 8)
+  public void verifyPageTimings(String timing_baseline, double timing_threshold_pct){
+
+    System.out.println("----------- Executing verifyPageTimings");
+
+    RedcapTimingUtil.saveTimings("target/page-timings.properties");
+    if(RedcapTimingUtil.isBaselineUpdate()){
+      RedcapTimingUtil.updateBaseline(timing_baseline);
+      return;
+    }
+    List<String> regressions = RedcapTimingUtil.checkTimingRegressions(timing_baseline, timing_threshold_pct);
+    for(String regression : regressions){
+      System.out.println("Timing regression: "+regression);
+    }
+    Assert.assertTrue(regressions.isEmpty());
+  }
+
   /**
    * Closes the browser
    */
@@ -0,0 +1,90 @@
+import com.github.draju.rcsel.RedcapSessionPool;
+import com.github.draju.rcsel.RedcapTestUtil;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebDriver;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Parameters;
+import org.testng.annotations.Test;
+
+import java.util.List;
+
+
+
+/**
+ * Test REDCap under several users at once, using the accounts from a RedcapSessionPool.
+ */
+public class RecordContentionTest {
+
+  private static RedcapSessionPool pool;
+
+  /**
+   * Loads the pool of test accounts
+   */
+  @Parameters({ "users_file" })
+  @BeforeTest
+  public void loadUsers(String users_file){
+    System.out.println("=========== Running tests for "+this.getClass().getSimpleName());
+    pool = new RedcapSessionPool();
+    pool.loadUsers(users_file);
+    System.out.println("Loaded "+pool.size()+" REDCap test accounts");
+  }
+
+  /**
+   * Logs in several sessions at once and opens the project page in each
+   */
+  @Parameters({ "project_title", "num_sessions", "num_users" })
+  @Test(priority = 0)
+  public void verifyConcurrentLogins(final String project_title, int num_sessions, int num_users){
+
+    System.out.println("----------- Executing verifyConcurrentLogins");
+
+    List<RedcapSessionPool.SessionResult> results = pool.runConcurrentSessions(num_sessions, num_users, new RedcapSessionPool.SessionTask() {
+      public void run(WebDriver driver, RedcapSessionPool.RedcapUser user, RedcapSessionPool.SessionResult result) throws Exception {
+        long start = System.currentTimeMillis();
+        RedcapTestUtil.markCurrentPage(driver);
+        driver.findElement(By.partialLinkText(project_title)).click();
+        RedcapTestUtil.waitForPageReady(driver, "projectPage", true, false);
+        result.openMs = System.currentTimeMillis() - start;
+      }
+    });
+
+    int errors = 0;
+    for(RedcapSessionPool.SessionResult result : results){
+      System.out.println(result);
+      if(result.error != null){
+        errors++;
+      }
+    }
+    Assert.assertEquals(results.size(), num_sessions);
+    Assert.assertEquals(errors, 0);
+  }
+
+  /**
+   * Opens and saves the same record as several users at once; REDCap should only let one of them edit it
+   */
+  @Parameters({ "pid", "orig_record", "event_id", "form_name", "num_users" })
+  @Test(priority = 1)
+  public void verifyRecordContention(int pid, int orig_record, int event_id, String form_name, int num_users){
+
+    System.out.println("----------- Executing verifyRecordContention");
+
+    List<RedcapSessionPool.SessionResult> results = pool.runRecordContention(pid, orig_record, event_id, form_name, num_users);
+
+    int errors = 0;
+    int editors = 0;
+    for(RedcapSessionPool.SessionResult result : results){
+      System.out.println(result);
+      if(result.error != null){
+        errors++;
+      }
+      else if(!result.locked){
+        editors++;
+      }
+    }
+    Assert.assertEquals(errors, 0);
+    Assert.assertEquals(editors, 1);
+  }
+}
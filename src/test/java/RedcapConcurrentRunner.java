@@ -0,0 +1,67 @@
+package com.github.draju.rcsel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the same browser session many times at once on a fixed number of threads.
+ * Used by RedcapSessionPool for logged in sessions and by RedcapSurveyUtil for public surveys.
+ */
+public class RedcapConcurrentRunner {
+
+  /**
+   * Work done by one session.  call() should catch its own exceptions and report them in its result.
+   *
+   * @param <T> result of one session
+   */
+  public interface Session<T> extends Callable<T> {
+    /**
+     * @param error description of why the session has no result
+     * @return result reported for a session that did not finish in time
+     */
+    T timedOut(String error);
+  }
+
+  /**
+   * Runs a session numSessions times with at most maxConcurrent sessions at once.
+   * Sessions still running after timeoutSec seconds are interrupted and reported with session.timedOut().
+   *
+   * @param numSessions number of sessions to run
+   * @param maxConcurrent maximum number of sessions, i.e. browsers, running at the same time
+   * @param timeoutSec number of seconds the whole run may take before its sessions are abandoned
+   * @param session work to do in each session
+   * @return one result per session, in session order
+   */
+  public static <T> List<T> runSessions(int numSessions, int maxConcurrent, int timeoutSec, final Session<T> session){
+    ExecutorService executor = Executors.newFixedThreadPool(maxConcurrent);
+    List<Future<T>> futures = new ArrayList<Future<T>>();
+    for(int i=0; i < numSessions; i++){
+      futures.add(executor.submit(session));
+    }
+    executor.shutdown();
+
+    List<T> results = new ArrayList<T>();
+    try {
+      executor.awaitTermination(timeoutSec, TimeUnit.SECONDS);
+      for(Future<T> future : futures){
+        if(future.isDone()){
+          results.add(future.get());
+        }
+        else {
+          results.add(session.timedOut("Session did not finish within "+timeoutSec+" seconds"));
+        }
+      }
+    }
+    catch (Exception ex) {
+      System.out.println("Exception waiting for sessions: " + ex.getMessage());
+    }
+    executor.shutdownNow();
+    return results;
+  }
+
+} // End of Class RedcapConcurrentRunner
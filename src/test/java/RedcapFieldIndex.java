@@ -0,0 +1,79 @@
+package com.github.draju.rcsel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Read-only index of a record's values, keyed by the names REDCap uses for the fields in the DOM.
+ * Radio inputs are named "field___radio" and checkboxes "__chkn__field", so those names are resolved
+ * when the index is built and lookups while entering a form need no string manipulation.
+ * Safe to share between threads once constructed.
+ */
+public class RedcapFieldIndex {
+
+  public static final String RADIO_SUFFIX = "___radio";
+  public static final String CHECKBOX_PREFIX = "__chkn__";
+
+  //Map of DOM name to the field's non-null values in record order, and the same values as a set for matching
+  private final Map<String, List<String>> valuesByName = new HashMap<String, List<String>>();
+  private final Map<String, Set<String>> valueSetsByName = new HashMap<String, Set<String>>();
+
+  /**
+   * Build the index from a record loaded with RedcapTestUtil.loadRecord()
+   *
+   * @param record map of REDCap variable name to list of values
+   */
+  public RedcapFieldIndex(Map<String, List<String>> record){
+    for(Map.Entry<String, List<String>> entry : record.entrySet()){
+      String fieldName = entry.getKey();
+      if(fieldName == null || entry.getValue() == null){
+        continue;
+      }
+      List<String> values = new ArrayList<String>();
+      for(String value : entry.getValue()){
+        if(value != null){
+          values.add(value);
+        }
+      }
+      if(values.isEmpty()){
+        continue;
+      }
+      values = Collections.unmodifiableList(values);
+      Set<String> valueSet = Collections.unmodifiableSet(new HashSet<String>(values));
+
+      //Register the plain name and both munged names, all pointing at the same values
+      String[] domNames = {fieldName, fieldName + RADIO_SUFFIX, CHECKBOX_PREFIX + fieldName};
+      for(String domName : domNames){
+        valuesByName.put(domName, values);
+        valueSetsByName.put(domName, valueSet);
+      }
+    }
+  }
+
+  /**
+   * @param domName name attribute of a select, textarea or input element
+   * @return the field's non-null values in record order, or null if the record has no value for the field
+   */
+  public List<String> getValues(String domName){
+    return domName == null ? null : valuesByName.get(domName);
+  }
+
+  /**
+   * @param domName name attribute of a select, textarea or input element
+   * @param value option value, radio value or checkbox code to match
+   * @return true if the record has this value for the field
+   */
+  public boolean contains(String domName, String value){
+    if(domName == null || value == null){
+      return false;
+    }
+    Set<String> valueSet = valueSetsByName.get(domName);
+    return valueSet != null && valueSet.contains(value);
+  }
+
+} // End of Class RedcapFieldIndex
@@ -0,0 +1,280 @@
+package com.github.draju.rcsel;
+
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Creates prerequisite records directly in the REDCap database instead of through the browser.
+ * Records are cloned from an existing source record in redcap_data, so tests can set up many fixture records in seconds.
+ * Note that seeded records have no entries in the REDCap log, since they bypass REDCap itself.
+ */
+public class RedcapSeedUtil {
+
+  /** Maximum number of rows sent in one multi-row INSERT statement */
+  public static int BATCH_ROWS = 500;
+
+  //One redcap_data row of the source record
+  private static class DataRow {
+    final int eventID;
+    final String fieldName;
+    final String value;
+    final Integer instance;
+
+    DataRow(int eventID, String fieldName, String value, Integer instance){
+      this.eventID = eventID;
+      this.fieldName = fieldName;
+      this.value = value;
+      this.instance = instance;
+    }
+  }
+
+  /**
+   * Clones an existing record into new records with the next free numeric record IDs.
+   * All events of the source record are copied and the record ID field is set to each new ID.
+   * Everything is inserted in a single transaction, so either all records are created or none.
+   *
+   * @param pid REDCap project ID
+   * @param origRecord record ID of the source record
+   * @param numRecords number of records to create
+   * @return record IDs of the new records in ascending order, empty on error
+   */
+  public static List<Integer> seedRecords(int pid, int origRecord, int numRecords){
+    List<Integer> newRecords = new ArrayList<Integer>();
+    if(numRecords <= 0){
+      return newRecords;
+    }
+    if(RedcapTestUtil.conn == null){
+      RedcapTestUtil.initializeDB();
+      if(RedcapTestUtil.conn == null){
+        return newRecords;
+      }
+    }
+
+    boolean autoCommit = true;
+    try {
+      autoCommit = RedcapTestUtil.conn.getAutoCommit();
+      RedcapTestUtil.conn.setAutoCommit(false);
+
+      String pkField = getRecordIdField(pid);
+      List<DataRow> sourceRows = getSourceRows(pid, origRecord);
+      if(pkField == null || sourceRows.isEmpty()){
+        System.out.println("Cannot seed records: record "+origRecord+" not found in project "+pid);
+        RedcapTestUtil.conn.rollback();
+        return newRecords;
+      }
+
+      int nextRecord = getMaxRecord(pid) + 1;
+      for(int i=0; i < numRecords; i++){
+        newRecords.add(nextRecord + i);
+      }
+      insertRows(pid, pkField, sourceRows, newRecords);
+      clearRecordCount(pid);
+
+      RedcapTestUtil.conn.commit();
+      RedcapTestUtil.echoDebug("Seeded "+numRecords+" records from record "+origRecord+" with "+sourceRows.size()+" rows each");
+    }
+    catch (SQLException ex) {
+      System.out.println("SQLException: " + ex.getMessage());
+      System.out.println("SQLState: " + ex.getSQLState());
+      System.out.println("VendorError: " + ex.getErrorCode());
+      try { RedcapTestUtil.conn.rollback(); } catch(Exception e) {}
+      newRecords.clear();
+    }
+    finally {
+      try { RedcapTestUtil.conn.setAutoCommit(autoCommit); } catch(Exception e) {}
+    }
+    return newRecords;
+  }
+
+  /**
+   * Deletes records created by seedRecords() from redcap_data.
+   * Everything is deleted in a single transaction, so either all records are removed or none.
+   *
+   * @param pid REDCap project ID
+   * @param records record IDs to delete, e.g. as returned by seedRecords()
+   * @return number of redcap_data rows deleted or -1 on error
+   */
+  public static int deleteRecords(int pid, List<Integer> records){
+    if(records == null || records.isEmpty()){
+      return 0;
+    }
+    if(RedcapTestUtil.conn == null){
+      RedcapTestUtil.initializeDB();
+      if(RedcapTestUtil.conn == null){
+        return -1;
+      }
+    }
+
+    int deleted = 0;
+    boolean autoCommit = true;
+    try {
+      autoCommit = RedcapTestUtil.conn.getAutoCommit();
+      RedcapTestUtil.conn.setAutoCommit(false);
+
+      //Delete in batches of up to BATCH_ROWS record IDs per statement
+      for(int from=0; from < records.size(); from+=BATCH_ROWS){
+        List<Integer> batch = records.subList(from, Math.min(from + BATCH_ROWS, records.size()));
+        StringBuilder sql = new StringBuilder("DELETE from redcap_data where project_id=? and record in (");
+        for(int i=0; i < batch.size(); i++){
+          sql.append(i == 0 ? "?" : ",?");
+        }
+        sql.append(")");
+        PreparedStatement ps = RedcapTestUtil.conn.prepareStatement(sql.toString());
+        try {
+          int param = 1;
+          ps.setInt(param++, pid);
+          for(Integer record : batch){
+            ps.setString(param++, ""+record);
+          }
+          deleted += ps.executeUpdate();
+        }
+        finally {
+          ps.close();
+        }
+      }
+      clearRecordCount(pid);
+
+      RedcapTestUtil.conn.commit();
+      RedcapTestUtil.echoDebug("Deleted "+records.size()+" seeded records ("+deleted+" rows)");
+    }
+    catch (SQLException ex) {
+      System.out.println("SQLException: " + ex.getMessage());
+      System.out.println("SQLState: " + ex.getSQLState());
+      System.out.println("VendorError: " + ex.getErrorCode());
+      try { RedcapTestUtil.conn.rollback(); } catch(Exception e) {}
+      deleted = -1;
+    }
+    finally {
+      try { RedcapTestUtil.conn.setAutoCommit(autoCommit); } catch(Exception e) {}
+    }
+    return deleted;
+  }
+
+  //The record ID field is the first field of the project's data dictionary
+  private static String getRecordIdField(int pid) throws SQLException {
+    PreparedStatement ps = RedcapTestUtil.conn.prepareStatement(
+      "SELECT field_name from redcap_metadata where project_id=? order by field_order limit 1");
+    try {
+      ps.setInt(1, pid);
+      ResultSet rows = ps.executeQuery();
+      return rows.next() ? rows.getString(1) : null;
+    }
+    finally {
+      ps.close();
+    }
+  }
+
+  private static List<DataRow> getSourceRows(int pid, int origRecord) throws SQLException {
+    List<DataRow> sourceRows = new ArrayList<DataRow>();
+    PreparedStatement ps = RedcapTestUtil.conn.prepareStatement(
+      "SELECT event_id, field_name, value, instance from redcap_data where project_id=? and record=?");
+    try {
+      ps.setInt(1, pid);
+      ps.setString(2, ""+origRecord);
+      ResultSet rows = ps.executeQuery();
+      while(rows.next()){
+        int instance = rows.getInt(4);
+        sourceRows.add(new DataRow(rows.getInt(1), rows.getString(2), rows.getString(3), rows.wasNull() ? null : instance));
+      }
+    }
+    finally {
+      ps.close();
+    }
+    return sourceRows;
+  }
+
+  //Locks the project's records until commit so concurrent seeding or data entry cannot take the same IDs
+  private static int getMaxRecord(int pid) throws SQLException {
+    PreparedStatement ps = RedcapTestUtil.conn.prepareStatement(
+      "SELECT max(cast(record as unsigned)) from redcap_data where project_id=? for update");
+    try {
+      ps.setInt(1, pid);
+      ResultSet rows = ps.executeQuery();
+      return rows.next() ? rows.getInt(1) : 0;
+    }
+    finally {
+      ps.close();
+    }
+  }
+
+  //Sends all cloned rows using multi-row INSERT statements of up to BATCH_ROWS rows
+  private static void insertRows(int pid, String pkField, List<DataRow> sourceRows, List<Integer> newRecords) throws SQLException {
+    int totalRows = sourceRows.size() * newRecords.size();
+    PreparedStatement fullBatch = null;
+    try {
+      int rowNum = 0;
+      while(rowNum < totalRows){
+        int batchRows = Math.min(BATCH_ROWS, totalRows - rowNum);
+        PreparedStatement ps;
+        if(batchRows == BATCH_ROWS){
+          //Reuse the statement for full batches, only the final partial batch needs its own
+          if(fullBatch == null){
+            fullBatch = RedcapTestUtil.conn.prepareStatement(getInsertSQL(BATCH_ROWS));
+          }
+          ps = fullBatch;
+        }
+        else {
+          ps = RedcapTestUtil.conn.prepareStatement(getInsertSQL(batchRows));
+        }
+        try {
+          int param = 1;
+          for(int i=0; i < batchRows; i++, rowNum++){
+            String record = ""+newRecords.get(rowNum / sourceRows.size());
+            DataRow row = sourceRows.get(rowNum % sourceRows.size());
+            ps.setInt(param++, pid);
+            ps.setInt(param++, row.eventID);
+            ps.setString(param++, record);
+            ps.setString(param++, row.fieldName);
+            ps.setString(param++, row.fieldName.equals(pkField) ? record : row.value);
+            if(row.instance == null){
+              ps.setNull(param++, Types.INTEGER);
+            }
+            else {
+              ps.setInt(param++, row.instance);
+            }
+          }
+          ps.executeUpdate();
+        }
+        finally {
+          if(ps != fullBatch) ps.close();
+        }
+      }
+    }
+    finally {
+      if (fullBatch != null) try { fullBatch.close(); } catch(Exception e) {}
+    }
+  }
+
+  private static String getInsertSQL(int numRows){
+    StringBuilder sql = new StringBuilder("INSERT INTO redcap_data (project_id, event_id, record, field_name, value, instance) VALUES ");
+    for(int i=0; i < numRows; i++){
+      sql.append(i == 0 ? "(?,?,?,?,?,?)" : ",(?,?,?,?,?,?)");
+    }
+    return sql.toString();
+  }
+
+  //REDCap caches record counts per project; removing the cached count makes REDCap recount on next page load
+  private static void clearRecordCount(int pid) throws SQLException {
+    DatabaseMetaData meta = RedcapTestUtil.conn.getMetaData();
+    ResultSet tables = meta.getTables(null, null, "redcap_record_counts", null);
+    boolean hasCounts = tables.next();
+    tables.close();
+    if(hasCounts){
+      Statement st = RedcapTestUtil.conn.createStatement();
+      try {
+        st.executeUpdate("DELETE from redcap_record_counts where project_id='"+pid+"'");
+      }
+      finally {
+        st.close();
+      }
+    }
+  }
+
+} // End of Class RedcapSeedUtil
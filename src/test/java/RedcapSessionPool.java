@@ -0,0 +1,322 @@
+package com.github.draju.rcsel;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Pool of REDCap test accounts that are handed out to concurrent browser sessions.
+ * Accounts are assigned fairly (first come, first served, least used account first) and
+ * each account can only be checked out again after its minimum interval has passed.
+ */
+public class RedcapSessionPool {
+
+  /** Default minimum number of milliseconds between two checkouts of the same account */
+  public static long DEFAULT_MIN_INTERVAL_MS = 2000;
+
+  /** Number of seconds a concurrent run may take before its sessions are abandoned */
+  public static int SESSION_TIMEOUT = 300;
+
+  /**
+   * A REDCap test account and its usage within the pool
+   */
+  public static class RedcapUser {
+    public final String username;
+    public final String password;
+    public final long minIntervalMs;
+    private boolean inUse = false;
+    private int useCount = 0;
+    private long lastCheckout = 0;
+
+    public RedcapUser(String username, String password, long minIntervalMs){
+      this.username = username;
+      this.password = password;
+      this.minIntervalMs = minIntervalMs;
+    }
+
+    public int getUseCount(){
+      return useCount;
+    }
+  }
+
+  /**
+   * Work done by one browser session after it has logged in
+   */
+  public interface SessionTask {
+    /**
+     * @param driver WebDriver browser instance, logged in as user
+     * @param user account the session is logged in as
+     * @param result result object for the task to record its latencies in
+     */
+    void run(WebDriver driver, RedcapUser user, SessionResult result) throws Exception;
+  }
+
+  /**
+   * Outcome of one browser session
+   */
+  public static class SessionResult {
+    public String username;
+    public long loginMs = -1;
+    public long openMs = -1;
+    public long saveMs = -1;
+    public boolean locked = false;
+    public String error = null;
+
+    public String toString(){
+      return "user="+username+"; loginMs="+loginMs+"; openMs="+openMs+"; saveMs="+saveMs+"; locked="+locked+(error != null ? "; error="+error : "");
+    }
+  }
+
+  private final List<RedcapUser> users = new ArrayList<RedcapUser>();
+  //Sessions waiting for an account, served in arrival order
+  private final LinkedList<Object> waiters = new LinkedList<Object>();
+
+  /**
+   * Add an account to the pool using the default minimum interval between checkouts
+   *
+   * @param username REDCap username
+   * @param passwd REDCap password
+   */
+  public synchronized void addUser(String username, String passwd){
+    addUser(username, passwd, DEFAULT_MIN_INTERVAL_MS);
+  }
+
+  /**
+   * Add an account to the pool
+   *
+   * @param username REDCap username
+   * @param passwd REDCap password
+   * @param minIntervalMs minimum number of milliseconds between two checkouts of this account
+   */
+  public synchronized void addUser(String username, String passwd, long minIntervalMs){
+    users.add(new RedcapUser(username, passwd, minIntervalMs));
+    notifyAll();
+  }
+
+  /**
+   * Add the accounts listed in a properties file with one "username=password" entry per line.
+   * If the file cannot be read, the pool falls back to DEFAULT_REDCAP_USER.
+   *
+   * @param path location of the properties file
+   */
+  public synchronized void loadUsers(String path){
+    Properties props = new Properties();
+    InputStream in = null;
+    try {
+      in = new FileInputStream(path);
+      props.load(in);
+      for(String username : props.stringPropertyNames()){
+        addUser(username, props.getProperty(username));
+      }
+    }
+    catch (IOException ex) {
+      System.out.println("IOException reading users from "+path+": " + ex.getMessage());
+    }
+    finally {
+      if (in != null) try { in.close(); } catch(Exception e) {}
+    }
+    if(users.isEmpty()){
+      addUser(RedcapTestUtil.DEFAULT_REDCAP_USER, RedcapTestUtil.DEFAULT_REDCAP_PASS);
+    }
+  }
+
+  /**
+   * @return number of accounts in the pool
+   */
+  public synchronized int size(){
+    return users.size();
+  }
+
+  /**
+   * Hands out an account, blocking until one is free and its minimum interval has passed.
+   * Waiting sessions are served in arrival order; among the available accounts the least used is picked.
+   *
+   * @return account that must be given back with release()
+   * @throws InterruptedException if the thread is interrupted while waiting
+   */
+  public synchronized RedcapUser checkout() throws InterruptedException {
+    Object ticket = new Object();
+    waiters.add(ticket);
+    try {
+      while(true){
+        long waitMs = 0;
+        if(waiters.peek() == ticket){
+          long now = System.currentTimeMillis();
+          RedcapUser best = null;
+          long soonest = Long.MAX_VALUE;
+          for(RedcapUser user : users){
+            if(user.inUse){
+              continue;
+            }
+            long readyAt = user.lastCheckout + user.minIntervalMs;
+            if(readyAt > now){
+              soonest = Math.min(soonest, readyAt);
+            }
+            else if(best == null || user.useCount < best.useCount
+                    || (user.useCount == best.useCount && user.lastCheckout < best.lastCheckout)){
+              best = user;
+            }
+          }
+          if(best != null){
+            best.inUse = true;
+            best.useCount++;
+            best.lastCheckout = now;
+            RedcapTestUtil.echoDebug("Checked out REDCap user "+best.username);
+            return best;
+          }
+          if(soonest != Long.MAX_VALUE){
+            waitMs = soonest - now;
+          }
+        }
+        //wait(0) waits until another session releases an account or leaves the queue
+        wait(waitMs);
+      }
+    }
+    finally {
+      waiters.remove(ticket);
+      notifyAll();
+    }
+  }
+
+  /**
+   * Gives an account back to the pool
+   *
+   * @param user account returned by checkout()
+   */
+  public synchronized void release(RedcapUser user){
+    user.inUse = false;
+    notifyAll();
+  }
+
+  /**
+   * Runs a task in several browser sessions at once.  Each session checks out an account,
+   * opens its own browser, logs in, runs the task, logs out and releases the account.
+   *
+   * @param numSessions number of sessions to run
+   * @param maxConcurrent maximum number of browsers open at the same time
+   * @param task work to do in each session once logged in
+   * @return one result per session, in session order
+   */
+  public List<SessionResult> runConcurrentSessions(int numSessions, int maxConcurrent, SessionTask task){
+    return runConcurrentSessions(numSessions, maxConcurrent, task, new CyclicBarrier[0], new AtomicBoolean(false));
+  }
+
+  //Same as above; a session that fails sets the failed flag and resets the passed in barriers,
+  //so sessions waiting on them fail instead of hanging, see awaitBarrier()
+  private List<SessionResult> runConcurrentSessions(int numSessions, int maxConcurrent, final SessionTask task,
+                                                    final CyclicBarrier[] barriers, final AtomicBoolean failed){
+    return RedcapConcurrentRunner.runSessions(numSessions, maxConcurrent, SESSION_TIMEOUT, new RedcapConcurrentRunner.Session<SessionResult>() {
+      public SessionResult call() {
+        return runSession(task, barriers, failed);
+      }
+
+      public SessionResult timedOut(String error) {
+        SessionResult result = new SessionResult();
+        result.error = error;
+        return result;
+      }
+    });
+  }
+
+  /**
+   * Scenario where several users open the same data entry form of a record at once and then all save it at once.
+   * REDCap only lets the first user edit the form, so this measures record-locking contention and its latency.
+   * Pool must contain at least numUsers accounts, since every session holds its account for the whole scenario.
+   * If any session fails, e.g. on login, the others stop waiting for it and report the failure as an error.
+   *
+   * @param pid REDCap project ID
+   * @param recNum record ID to open
+   * @param eventID REDCap event ID
+   * @param formName name of data entry form, e.g. "My First Instrument"
+   * @param numUsers number of users editing the record at once
+   * @return one result per user; locked is true for users that REDCap did not let edit the form
+   * @throws IllegalArgumentException if the pool has fewer than numUsers accounts
+   */
+  public List<SessionResult> runRecordContention(final int pid, final int recNum, final int eventID, final String formName, int numUsers){
+    if(size() < numUsers){
+      throw new IllegalArgumentException("Record contention with "+numUsers+" users needs at least that many accounts, pool has "+size());
+    }
+    //Barriers make all sessions open the form together, then save together
+    final CyclicBarrier openBarrier = new CyclicBarrier(numUsers);
+    final CyclicBarrier saveBarrier = new CyclicBarrier(numUsers);
+    final AtomicBoolean failed = new AtomicBoolean(false);
+
+    return runConcurrentSessions(numUsers, numUsers, new SessionTask() {
+      public void run(WebDriver driver, RedcapUser user, SessionResult result) throws Exception {
+        awaitBarrier(openBarrier, failed);
+        long start = System.currentTimeMillis();
+        RedcapTestUtil.openDataEntryForm(driver, pid, recNum, eventID, formName);
+        result.openMs = System.currentTimeMillis() - start;
+
+        //REDCap does not show an enabled save button to users who cannot edit the form while another user has it open
+        List<WebElement> saveButtons = driver.findElements(By.cssSelector("button#submit-btn-saverecord"));
+        result.locked = saveButtons.isEmpty() || !saveButtons.get(0).isEnabled();
+
+        awaitBarrier(saveBarrier, failed);
+        if(!result.locked){
+          start = System.currentTimeMillis();
+          RedcapTestUtil.markCurrentPage(driver);
+          saveButtons.get(0).click();
+          RedcapTestUtil.waitAndHandlePopup(driver,"div.ui-dialog-buttonset button.ui-button","Ignore and leave record");
+          RedcapTestUtil.waitForPageReady(driver, "saveForm", true, false);
+          result.saveMs = System.currentTimeMillis() - start;
+        }
+      }
+    }, new CyclicBarrier[] {openBarrier, saveBarrier}, failed);
+  }
+
+  //Runs one complete session: checkout, browser, login, task, logout, release
+  private SessionResult runSession(SessionTask task, CyclicBarrier[] barriers, AtomicBoolean failed){
+    SessionResult result = new SessionResult();
+    RedcapUser user = null;
+    WebDriver driver = null;
+    try {
+      user = checkout();
+      result.username = user.username;
+      driver = RedcapTestUtil.createDriver();
+      driver.get(RedcapTestUtil.BASE_URL);
+      long start = System.currentTimeMillis();
+      RedcapTestUtil.loginRedcap(driver, user.username, user.password);
+      result.loginMs = System.currentTimeMillis() - start;
+      task.run(driver, user, result);
+      RedcapTestUtil.logoutRedcap(driver);
+    }
+    catch (Exception ex) {
+      result.error = ex.getClass().getSimpleName()+": "+ex.getMessage();
+      RedcapTestUtil.echoDebug("Session for "+result.username+" failed: "+result.error);
+      //Set the flag before resetting, so sessions that have not reached a barrier yet see it instead of waiting on the fresh barrier
+      failed.set(true);
+      for(CyclicBarrier barrier : barriers){
+        barrier.reset();
+      }
+    }
+    finally {
+      if (driver != null) try { driver.quit(); } catch(Exception e) {}
+      if (user != null) release(user);
+    }
+    RedcapTestUtil.echoDebug("Session finished: "+result);
+    return result;
+  }
+
+  //Waits for all sessions at a barrier unless one of them has failed.  A failed session never reaches the barrier,
+  //so it cannot trip without it; reset() makes sessions already waiting throw BrokenBarrierException.
+  private static void awaitBarrier(CyclicBarrier barrier, AtomicBoolean failed) throws Exception {
+    if(failed.get()){
+      throw new IllegalStateException("Another session failed, not waiting for it");
+    }
+    barrier.await(SESSION_TIMEOUT, TimeUnit.SECONDS);
+  }
+
+} // End of Class RedcapSessionPool
@@ -0,0 +1,231 @@
+package com.github.draju.rcsel;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Contains utility functions for entering REDCap public surveys, which need no login.
+ * Survey pages are filled from a source record with the same field-mapping rules as RedcapTestUtil.enterForm().
+ */
+public class RedcapSurveyUtil {
+
+  /** Surveys with more pages than this are treated as stuck, e.g. on a required field that cannot be filled */
+  public static int MAX_SURVEY_PAGES = 50;
+
+  /** Number of seconds a concurrent survey run may take before its sessions are abandoned */
+  public static int SURVEY_RUN_TIMEOUT = 600;
+
+  //REDCap shows its survey completion text in this element once the last page is submitted
+  private static final String SURVEY_COMPLETED_CSS = "#surveyacknowledgment";
+
+  /**
+   * Outcome of entering one survey
+   */
+  public static class SurveyResult {
+    public boolean completed = false;
+    public List<Long> pageMs = new ArrayList<Long>();
+    public String error = null;
+
+    public String toString(){
+      return "completed="+completed+"; pages="+pageMs.size()+"; pageMs="+pageMs+(error != null ? "; error="+error : "");
+    }
+  }
+
+  /**
+   * Summary of a concurrent survey run
+   */
+  public static class SurveyReport {
+    public int started = 0;
+    public int completed = 0;
+    public long elapsedMs = 0;
+    public List<Long> pageMs = new ArrayList<Long>();
+    public List<SurveyResult> results = new ArrayList<SurveyResult>();
+
+    /**
+     * @return number of completed surveys per minute of wall clock time
+     */
+    public double getSurveysPerMinute(){
+      return elapsedMs > 0 ? completed * 60000.0 / elapsedMs : 0;
+    }
+
+    public String toString(){
+      return "started="+started+"; completed="+completed+"; elapsedMs="+elapsedMs
+        +"; surveysPerMinute="+String.format("%.1f", getSurveysPerMinute())
+        +"; pages="+pageMs.size()
+        +"; pageMs p50="+RedcapTimingUtil.percentile(pageMs, 50)+" p95="+RedcapTimingUtil.percentile(pageMs, 95);
+    }
+  }
+
+  /**
+   * Looks up the hash of the public survey link for a form
+   *
+   * @param pid REDCap project ID
+   * @param formName name of the survey's form, e.g. "My First Instrument"
+   * @param eventID REDCap event ID
+   * @return public survey hash or null if the form has no public survey link
+   */
+  public static String getPublicSurveyHash(int pid, String formName, int eventID){
+    String instrument = formName.toLowerCase().replaceAll(" ", "_");
+    //The public survey link is the participant entry without an email address
+    String selectSQL = "SELECT p.hash from redcap_surveys s join redcap_surveys_participants p on p.survey_id = s.survey_id"
+                     + " where s.project_id='"+pid+"' and s.form_name='"+instrument+"' and p.event_id='"+eventID+"'"
+                     + " and p.participant_email is null";
+    return RedcapTestUtil.getDBvalue(selectSQL);
+  }
+
+  /**
+   * @param hash survey hash, e.g. from getPublicSurveyHash()
+   * @return URL that opens the survey
+   */
+  public static String getSurveyUrl(String hash){
+    return RedcapTestUtil.BASE_URL+"/surveys/?s="+hash;
+  }
+
+  /**
+   * Opens a survey and fills each page from the passed in values, clicking "Next Page" until the survey is submitted.
+   * The survey only counts as completed if REDCap shows its completion text after a submit; a first page
+   * without a submit button, e.g. for a closed survey or a bad link, is an error.
+   * Page latency is measured from clicking the page's submit button until the next page is ready.
+   *
+   * @param driver WebDriver browser instance, does not need to be logged in
+   * @param surveyUrl URL of the survey, e.g. from getSurveyUrl()
+   * @param index values of the source record keyed by DOM name
+   * @param formName name of the survey's form, used to tag page timings
+   * @return result of entering the survey
+   */
+  public static SurveyResult enterSurvey(WebDriver driver, String surveyUrl, RedcapFieldIndex index, String formName){
+    SurveyResult result = new SurveyResult();
+    long start = System.currentTimeMillis();
+    RedcapTestUtil.markCurrentPage(driver);
+    driver.get(surveyUrl);
+    RedcapTestUtil.waitForPageReady(driver, "surveyPage", true, false);
+    result.pageMs.add(System.currentTimeMillis() - start);
+    RedcapTimingUtil.capturePageTiming(driver, "surveyPage", formName);
+
+    String prevPage = null;
+    for(int page = 1; page <= MAX_SURVEY_PAGES; page++){
+      //Both "Next Page >>" and the final "Submit" button use this name; once neither is shown the survey should be complete
+      List<WebElement> submitButtons = driver.findElements(By.cssSelector("button[name='submit-btn-saverecord']"));
+      if(submitButtons.isEmpty()){
+        if(page == 1){
+          result.error = "Survey shows no submit button, check that it is active and the link is valid: "+surveyUrl;
+        }
+        else if(driver.findElements(By.cssSelector(SURVEY_COMPLETED_CSS)).isEmpty()){
+          result.error = "Survey shows neither a submit button nor its completion text after "+(page - 1)+" pages";
+        }
+        else {
+          result.completed = true;
+        }
+        return result;
+      }
+
+      //REDCap shows the same page again when it fails validation, e.g. on a required field.
+      //Filling it again would duplicate text and uncheck checkboxes, so stop instead.
+      String currPage = getSurveyPageNum(driver);
+      if(page > 1 && (currPage == null ? prevPage == null : currPage.equals(prevPage))){
+        result.error = "Survey page "+(currPage == null ? "1" : currPage)+" was shown again after submitting, check for required fields or validation errors";
+        return result;
+      }
+      prevPage = currPage;
+
+      //Unhide auto-complete dropdowns just like enterForm()
+      ((JavascriptExecutor)driver).executeScript("jQuery('select.rc-autocomplete').css('display','block')");
+      List<WebElement> dataCells = driver.findElements(By.cssSelector("td.data"));
+      RedcapTestUtil.echoDebug("Survey page "+page+" has " + dataCells.size() + " td.data rows");
+      for(WebElement cell : dataCells){
+        RedcapTestUtil.fillDataCell(cell, index);
+      }
+
+      start = System.currentTimeMillis();
+      RedcapTestUtil.markCurrentPage(driver);
+      submitButtons.get(0).click();
+      RedcapTestUtil.waitForPageReady(driver, "surveyPage", true, false);
+      result.pageMs.add(System.currentTimeMillis() - start);
+      RedcapTimingUtil.capturePageTiming(driver, "surveyPage", formName);
+    }
+    result.error = "Survey not completed after "+MAX_SURVEY_PAGES+" pages";
+    return result;
+  }
+
+  /**
+   * @param driver WebDriver browser instance with a survey page loaded
+   * @return value of the survey's hidden __page__ input, or null if the survey has a single page
+   */
+  public static String getSurveyPageNum(WebDriver driver){
+    List<WebElement> pageInputs = driver.findElements(By.cssSelector("input[name='__page__']"));
+    return pageInputs.isEmpty() ? null : pageInputs.get(0).getAttribute("value");
+  }
+
+  /**
+   * Enters the public survey of a form many times at once, each in its own browser without logging in.
+   * Every survey is filled from the same source record.
+   *
+   * @param origPID REDCap project ID of original record
+   * @param origRecord REDCap record ID of original record
+   * @param origEventID REDCap event ID of original record and survey
+   * @param formName name of the survey's form, e.g. "My First Instrument"
+   * @param numSurveys number of surveys to submit
+   * @param maxConcurrent maximum number of browsers open at the same time
+   * @return summary with completed surveys per minute and per-page latencies
+   */
+  public static SurveyReport runSurveys(int origPID, int origRecord, int origEventID, final String formName, int numSurveys, int maxConcurrent){
+    SurveyReport report = new SurveyReport();
+
+    //Look up everything that needs the shared database connection before starting the sessions
+    String hash = getPublicSurveyHash(origPID, formName, origEventID);
+    if(hash == null){
+      System.out.println("No public survey link found for form '"+formName+"' in project "+origPID);
+      return report;
+    }
+    final String surveyUrl = getSurveyUrl(hash);
+    final RedcapFieldIndex index = new RedcapFieldIndex(RedcapTestUtil.loadRecord(origPID, origRecord, origEventID));
+
+    long start = System.currentTimeMillis();
+    List<SurveyResult> results = RedcapConcurrentRunner.runSessions(numSurveys, maxConcurrent, SURVEY_RUN_TIMEOUT, new RedcapConcurrentRunner.Session<SurveyResult>() {
+      public SurveyResult call() {
+        return runSurveySession(surveyUrl, index, formName);
+      }
+
+      public SurveyResult timedOut(String error) {
+        SurveyResult result = new SurveyResult();
+        result.error = error;
+        return result;
+      }
+    });
+    for(SurveyResult result : results){
+      report.results.add(result);
+      report.started++;
+      if(result.completed){
+        report.completed++;
+      }
+      report.pageMs.addAll(result.pageMs);
+    }
+    report.elapsedMs = System.currentTimeMillis() - start;
+    return report;
+  }
+
+  //Enters one survey in its own browser
+  private static SurveyResult runSurveySession(String surveyUrl, RedcapFieldIndex index, String formName){
+    WebDriver driver = null;
+    SurveyResult result;
+    try {
+      driver = RedcapTestUtil.createDriver();
+      result = enterSurvey(driver, surveyUrl, index, formName);
+    }
+    catch (Exception ex) {
+      result = new SurveyResult();
+      result.error = ex.getClass().getSimpleName()+": "+ex.getMessage();
+    }
+    finally {
+      if (driver != null) try { driver.quit(); } catch(Exception e) {}
+    }
+    RedcapTestUtil.echoDebug("Survey finished: "+result);
+    return result;
+  }
+
+} // End of Class RedcapSurveyUtil
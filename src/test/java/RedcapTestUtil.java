@@ -2,7 +2,9 @@ package com.github.draju.rcsel;
 
 import org.openqa.selenium.By;
 import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.NoSuchElementException;
 import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
 import org.openqa.selenium.WebElement;
 import org.openqa.selenium.TimeoutException;
 import org.openqa.selenium.firefox.FirefoxDriver;
@@ -19,6 +21,7 @@ import java.sql.SQLException;
 import java.sql.Statement;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
@@ -51,6 +54,34 @@ public class RedcapTestUtil {
   public static ResultSet rs = null;
   public static Map<String, List<String>> recSet;
 
+  //Page readiness settings used by waitForPageReady()
+  public static int PAGE_READY_TIMEOUT = 10;      //seconds to wait for a step with no recorded latencies
+  public static long PAGE_READY_POLL_MS = 50;     //polling interval for all helper waits
+  public static long DOM_QUIET_MS = 150;          //DOM must be free of mutations this long to count as ready
+  public static int ADAPTIVE_MIN_SAMPLES = 5;     //recorded latencies needed before a step's timeout adapts
+  public static int ADAPTIVE_MAX_SAMPLES = 50;    //only the most recent latencies are kept for each step
+  public static double ADAPTIVE_FACTOR = 3.0;     //adaptive timeout is this multiple of the step's p95 latency
+  public static int ADAPTIVE_MIN_TIMEOUT = 2;     //adaptive timeouts never drop below this many seconds
+
+  //Map of step name to the most recent page readiness latencies in milliseconds
+  private static Map<String, List<Long>> stepLatencies = new HashMap<String, List<Long>>();
+
+  //Returns the number of milliseconds the DOM has been quiet, or -1 if the page is not ready yet.
+  //A MutationObserver is installed on first call for each document to track the last DOM change.
+  //When checkMark is true, a document still carrying the marker from markCurrentPage() is the old page and never ready.
+  private static final String PAGE_READY_JS =
+      "var checkMark = arguments[0];"
+    + "if(checkMark && window.__rcselMark){ return -1; }"
+    + "if(document.readyState !== 'complete'){ return -1; }"
+    + "if(window.jQuery && jQuery.active > 0){ return -1; }"
+    + "if(!window.__rcselObserver){"
+    + "  window.__rcselLastMutation = Date.now();"
+    + "  window.__rcselObserver = new MutationObserver(function(){ window.__rcselLastMutation = Date.now(); });"
+    + "  window.__rcselObserver.observe(document.documentElement, {childList:true, subtree:true, attributes:true, characterData:true});"
+    + "  return -1;"
+    + "}"
+    + "return Date.now() - window.__rcselLastMutation;";
+
   /**
    * Create connection to REDCap database server
    */
@@ -82,24 +113,30 @@ public class RedcapTestUtil {
    * Create browser instance and load the REDCap URL
    */
   public static void loadRedcap(){
+  	driver = createDriver();
+  	driver.get(BASE_URL);
+  }
+
+  /**
+   * Create a new browser instance without loading any page.
+   * Used directly when several browser sessions need to run at the same time.
+   *
+   * @return new WebDriver browser instance
+   */
+  public static WebDriver createDriver(){
     //Note that geckodriver is only needed with recent versions of Firefox
     System.setProperty("webdriver.gecko.driver",GECKO_DRIVER_LOC);
     //Reduce the verbosity of Firefox logging to the console
     System.setProperty(FirefoxDriver.SystemProperty.BROWSER_LOGFILE,"/dev/null");
 
-  	driver = new FirefoxDriver();
-  	driver.get(BASE_URL);
+    return new FirefoxDriver();
   }
 
   /**
    * Login as the default REDCap user via the REDCap login form
    */
   public static void loginRedcap() {
-    WebElement element = driver.findElement(By.id("username"));
-    element.sendKeys(DEFAULT_REDCAP_USER);
-    element = driver.findElement(By.id("password"));
-    element.sendKeys(DEFAULT_REDCAP_PASS);
-    driver.findElement(By.id("login_btn")).click();
+    loginRedcap(DEFAULT_REDCAP_USER, DEFAULT_REDCAP_PASS);
   }
 
   /**
@@ -109,17 +146,40 @@ public class RedcapTestUtil {
    * @param passwd   REDCap password
    */
   public static void loginRedcap(String username, String passwd) {
+    loginRedcap(driver, username, passwd);
+  }
+
+  /**
+   * Login as the specified REDCap user via the REDCap login form of the specified browser.
+   * Also used by concurrent sessions, so it waits with the fixed PAGE_READY_TIMEOUT.
+   *
+   * @param driver   WebDriver browser instance with the REDCap login page loaded
+   * @param username REDCap username 
+   * @param passwd   REDCap password
+   */
+  public static void loginRedcap(WebDriver driver, String username, String passwd) {
     WebElement element = driver.findElement(By.id("username"));
     element.sendKeys(username);
     element = driver.findElement(By.id("password"));
     element.sendKeys(passwd);
+    markCurrentPage(driver);
     driver.findElement(By.id("login_btn")).click();
+    waitForPageReady(driver, "loginRedcap", true, false);
   }
   
   /**
    * Log out by clicking the REDCap logout link
    */
   public static void logoutRedcap(){
+    logoutRedcap(driver);
+  }
+
+  /**
+   * Log out of the specified browser by clicking the REDCap logout link
+   *
+   * @param driver WebDriver browser instance
+   */
+  public static void logoutRedcap(WebDriver driver){
     driver.findElement(By.partialLinkText("Log out")).click(); 
   }
 
@@ -129,8 +189,23 @@ public class RedcapTestUtil {
    * @param partialLinkText link text to search for, partial match is okay
    */
   public static void clickOnLink(String partialLinkText){
-    WebElement element = new WebDriverWait(driver, 10).until(ExpectedConditions.elementToBeClickable(By.partialLinkText(partialLinkText)));
+    WebElement element = newWait(driver, PAGE_READY_TIMEOUT).until(ExpectedConditions.elementToBeClickable(By.partialLinkText(partialLinkText)));
+    element.click(); 
+  }
+
+  /**
+   * Find link based on link text, click it and wait for the resulting page to be ready
+   *
+   * @param partialLinkText link text to search for, partial match is okay
+   * @param newPage true if the link loads a new page, false if it only changes the current one (e.g. opens a dialog)
+   */
+  public static void clickOnLink(String partialLinkText, boolean newPage){
+    WebElement element = newWait(driver, PAGE_READY_TIMEOUT).until(ExpectedConditions.elementToBeClickable(By.partialLinkText(partialLinkText)));
+    if(newPage){
+      markCurrentPage();
+    }
     element.click(); 
+    waitForPageReady("clickOnLink:"+partialLinkText, newPage);
   }
 
   /**
@@ -140,16 +215,19 @@ public class RedcapTestUtil {
    */
   public static void selectAddNewRecord(){
     //Click Add/Edit Records link on sidebar
-    WebElement element = new WebDriverWait(driver, 10).until(ExpectedConditions.elementToBeClickable(By.partialLinkText("Add / Edit Records")));
+    WebElement element = newWait(driver, PAGE_READY_TIMEOUT).until(ExpectedConditions.elementToBeClickable(By.partialLinkText("Add / Edit Records")));
+    markCurrentPage();
     element.click();
+    waitForPageReady("addEditRecords", true);
 
     //Click 'Add new record' button
-    element = new WebDriverWait(driver, 10).until(ExpectedConditions.elementToBeClickable(By.xpath("//button[contains(.,'Add new record')]")));
+    element = newWait(driver, PAGE_READY_TIMEOUT).until(ExpectedConditions.elementToBeClickable(By.xpath("//button[contains(.,'Add new record')]")));
+    markCurrentPage();
     element.click();
 
     //Wait for next page to load before returning
-    //For longitudinal projects it's the event grid, for cross-sectional it's data entry form - both will contain record ID in URL
-    new WebDriverWait(driver, 5).until(ExpectedConditions.urlContains("id=")); 
+    //For longitudinal projects it's the event grid, for cross-sectional it's data entry form
+    waitForPageReady("selectAddNewRecord", true);
   }
 
   /**
@@ -162,13 +240,17 @@ public class RedcapTestUtil {
   public static void selectExistingRecord(int recNum, String selectID){
 
     //Click Add/Edit Records link on sidebar
-	WebElement element = new WebDriverWait(driver, 10).until(ExpectedConditions.elementToBeClickable(By.partialLinkText("Add / Edit Records")));
+	WebElement element = newWait(driver, PAGE_READY_TIMEOUT).until(ExpectedConditions.elementToBeClickable(By.partialLinkText("Add / Edit Records")));
+	markCurrentPage();
 	element.click();
+	waitForPageReady("addEditRecords", true);
 
 	//Wait for dropdown to appear before selecting the record
-	element = new WebDriverWait(driver, 10).until(ExpectedConditions.presenceOfElementLocated(By.id(selectID))); 
+	element = newWait(driver, PAGE_READY_TIMEOUT).until(ExpectedConditions.presenceOfElementLocated(By.id(selectID))); 
 	Select dropdown = new Select(element);    
+	markCurrentPage();
 	dropdown.selectByValue(""+recNum);
+	waitForPageReady("selectExistingRecord", true);
 
   }
 
@@ -183,8 +265,10 @@ public static void selectFormFromGrid(String formName){
   // Identify row of table with form name and then click on the first circular button you find
   // This method using xpath is the most concise, but could break if event table is modified 
   String xpathSelector = "//*[@id='event_grid_table']/tbody/tr/td[text()='"+formName+"']/following-sibling::td/a/img";
-  WebElement element = new WebDriverWait(driver, 10).until(ExpectedConditions.presenceOfElementLocated(By.xpath(xpathSelector))); 
+  WebElement element = newWait(driver, PAGE_READY_TIMEOUT).until(ExpectedConditions.presenceOfElementLocated(By.xpath(xpathSelector))); 
+  markCurrentPage();
   element.click();
+  waitForPageReady("selectFormFromGrid", true);
 
 }
 
@@ -195,8 +279,56 @@ public static void selectFormFromGrid(String formName){
  */
 public static void selectFormFromSidebar(String formName){
 
-  WebElement element = new WebDriverWait(driver, 10).until(ExpectedConditions.presenceOfElementLocated(By.id("form["+formName+"]"))); 
+  WebElement element = newWait(driver, PAGE_READY_TIMEOUT).until(ExpectedConditions.presenceOfElementLocated(By.id("form["+formName+"]"))); 
+  markCurrentPage();
   element.click();
+  waitForPageReady("selectFormFromSidebar", true);
+
+}
+
+/**
+ * Open the project setup page of a project directly by URL
+ *
+ * @param pid REDCap project ID
+ */
+public static void openProjectPage(int pid){
+
+  markCurrentPage();
+  driver.get(BASE_URL+"/"+REDCAP_VERSION+"/ProjectSetup/index.php?pid="+pid);
+  waitForPageReady("openProjectPage", true);
+
+}
+
+/**
+ * Open the record home page of an existing record directly by URL
+ *
+ * @param pid REDCap project ID
+ * @param recNum record ID to open
+ */
+public static void openRecordHome(int pid, int recNum){
+
+  markCurrentPage();
+  driver.get(BASE_URL+"/"+REDCAP_VERSION+"/DataEntry/record_home.php?pid="+pid+"&id="+recNum);
+  waitForPageReady("openRecordHome", true);
+
+}
+
+/**
+ * Open a data entry form for an existing record directly by URL, without going through the record home page.
+ * Useful when several browser sessions need to reach the same form at the same time, so it waits with the fixed PAGE_READY_TIMEOUT.
+ *
+ * @param driver WebDriver browser instance, already logged in
+ * @param pid REDCap project ID
+ * @param recNum record ID to open
+ * @param eventID REDCap event ID
+ * @param formName name of data entry form, e.g. "My First Instrument"
+ */
+public static void openDataEntryForm(WebDriver driver, int pid, int recNum, int eventID, String formName){
+
+  String page = formName.toLowerCase().replaceAll(" ", "_");
+  markCurrentPage(driver);
+  driver.get(BASE_URL+"/"+REDCAP_VERSION+"/DataEntry/index.php?pid="+pid+"&id="+recNum+"&event_id="+eventID+"&page="+page);
+  waitForPageReady(driver, "openDataEntryForm", true, false);
 
 }
 
@@ -217,12 +349,12 @@ public static void selectSaveButtonDropdown(String buttonID){
   }
   else {
     //First click the downward arrow to display the links
-    WebElement element = new WebDriverWait(driver, 10).until(ExpectedConditions.presenceOfElementLocated(By.id("submit-btn-dropdown"))); 
+    WebElement element = newWait(driver, PAGE_READY_TIMEOUT).until(ExpectedConditions.presenceOfElementLocated(By.id("submit-btn-dropdown"))); 
     element.click();
 
     //Click on the dropdown link
     String linkID = "a#"+buttonID;
-    element = new WebDriverWait(driver, 10).until(ExpectedConditions.elementToBeClickable(By.cssSelector(linkID)));
+    element = newWait(driver, PAGE_READY_TIMEOUT).until(ExpectedConditions.elementToBeClickable(By.cssSelector(linkID)));
     element.click(); 
   }
 }
@@ -235,16 +367,28 @@ public static void selectSaveButtonDropdown(String buttonID){
  * @param origEventID REDCap event ID
  */
   public static void getOriginalRecord(int origPID, int origRecord, int origEventID){
+    recSet = loadRecord(origPID, origRecord, origEventID);
+  }
+
+/**
+ * Returns REDCap data for a particular combination of project ID, record ID and event ID
+ * without storing it in recSet, so it can be shared by several browser sessions
+ *
+ * @param origPID REDCap project ID 
+ * @param origRecord REDCap record ID
+ * @param origEventID REDCap event ID
+ * @return map of variable name to list of values
+ */
+  public static Map<String, List<String>> loadRecord(int origPID, int origRecord, int origEventID){
 
+    //Store data in memory as a map of variable name to list of values
+    //Note that a list is needed because checkbox variables may be associated with multiple values 
+    Map<String, List<String>> values = new HashMap<String,List<String>>();
     try {
       if(conn == null){
         initializeDB();
       }
 
-      //Store data in memory as a map of variable name to list of values
-      //Note that a list is needed because checkbox variables may be associated with multiple values 
-      recSet = new HashMap<String,List<String>>();
-
       String selectSQL = "SELECT * from redcap_data where project_id='"+origPID+"' and record='"+origRecord+"' and event_id='"+origEventID+"'";
       stmt = conn.createStatement();
       rs = stmt.executeQuery(selectSQL);
@@ -264,9 +408,9 @@ public static void selectSaveButtonDropdown(String buttonID){
                 fieldValue = colValue;
             }                
         }
-        List<String> listOfValues = recSet.get(fieldName);
+        List<String> listOfValues = values.get(fieldName);
         if(listOfValues == null){
-          recSet.put(fieldName,listOfValues=new ArrayList<String>());
+          values.put(fieldName,listOfValues=new ArrayList<String>());
         }
         listOfValues.add(fieldValue);
         //echoDebug("Loaded fieldName=" + fieldName + "; fieldValue="+fieldValue);
@@ -277,6 +421,7 @@ public static void selectSaveButtonDropdown(String buttonID){
       System.out.println("SQLState: " + ex.getSQLState());
       System.out.println("VendorError: " + ex.getErrorCode());
     }       
+    return values;
   }
 
   /**
@@ -298,10 +443,13 @@ public static void selectSaveButtonDropdown(String buttonID){
     //Save the record ID which should have been entered or pre-filled by REDCap so you can return it to the calling function
     int recNum = -1;
     String xpathSelector = "//tr[@id='"+recVarName+"-tr']/td[contains(@class,'data')]";
-    WebElement element = new WebDriverWait(driver, 10).until(ExpectedConditions.presenceOfElementLocated(By.xpath(xpathSelector))); 
+    WebElement element = newWait(driver, PAGE_READY_TIMEOUT).until(ExpectedConditions.presenceOfElementLocated(By.xpath(xpathSelector))); 
     recNum = Integer.parseInt(element.getText());
     echoDebug("The new record number="+recNum);
 
+    //Make sure jQuery has finished wiring up branching logic and calculated fields before reading the form
+    waitForPageReady("enterForm", false);
+
     //Loop through the form's data fields and enter data that was previously loaded in memory with getOriginalRecord()          
     List<WebElement> dataCells = driver.findElements(By.cssSelector("td.data"));
     echoDebug("There are " + dataCells.size() + " td.data rows");
@@ -310,100 +458,10 @@ public static void selectSaveButtonDropdown(String buttonID){
     //To avoid that complexity, unhide these fields so they can be treated as normal select elements below
     ((JavascriptExecutor)driver).executeScript("jQuery('select.rc-autocomplete').css('display','block')");
 
+    //Resolve DOM names to values once so each element is matched without rescanning recSet
+    RedcapFieldIndex recIndex = new RedcapFieldIndex(recSet);
     for (WebElement cell : dataCells){
-      //Loop through any dropdown menus in this cell and select the appropriate option
-      List<WebElement> selectElements = cell.findElements(By.tagName("select"));
-      for(WebElement selectElement : selectElements){
-        if(selectElement != null && selectElement.isEnabled() && selectElement.isDisplayed()){
-            Select selectField = new Select(selectElement);
-            String selectName = selectElement.getAttribute("name");
-            //echoDebug("Select element's name: "+selectName);
-            List<WebElement> optionFields = selectElement.findElements(By.tagName("option"));
-            for(WebElement option: optionFields){
-              String optionValue = option.getAttribute("value");
-              List<String> dbFieldValues = (List<String>) recSet.get(selectName);
-              if(dbFieldValues != null){
-	              for(String dbFieldValue : dbFieldValues){
-	                if(dbFieldValue != null && dbFieldValue.equals(optionValue)){
-	                  selectField.selectByValue(optionValue);
-	                  break;
-	                }
-	              }
-              } 
-            }
-        }
-      }
-
-      //Loop through any textarea elements within this data cell and enter them
-      List<WebElement> textAreaElements = cell.findElements(By.tagName("textarea"));
-      for(WebElement textArea:textAreaElements){
-        if(textArea != null && textArea.isEnabled() && textArea.isDisplayed()){
-        	String textAreaName = textArea.getAttribute("name");
-        	List<String> textAreaValues = recSet.get(textAreaName);
-        	if(textAreaValues != null){
-	        	for(String val:textAreaValues){
-	        		textArea.sendKeys(val);
-	        		break;
-	        	}
-        	}
-        }
-      }
-
-      //Loop through all input tags within the data cell and enter them
-      List<WebElement> inputFields = cell.findElements(By.tagName("input"));
-      String inputName, lookupName, inputType, classStr, inputStyle;
-      List<String> inputValues;
-      for(WebElement inputField : inputFields){
-        // Reset values in case they are defined as blank strings
-        inputName = null; lookupName = null; inputType = null; inputValues = null; classStr = null; inputStyle = null;
-        inputType = inputField.getAttribute("type");
-        inputName = inputField.getAttribute("name");
-        //Need to strip off the ___radio in radio field name before doing the DB lookup
-        if(inputType.equals("radio")){
-          lookupName = inputName.replace("___radio","");
-        }
-        //Need to strip off the __chkn__ in checkbox field name before doing the DB lookup
-        else if(inputType.equals("checkbox")){
-          lookupName = inputName.replace("__chkn__","");  
-        }                                
-        else{
-          lookupName = inputName;
-        }
-        classStr = inputField.getAttribute("class");
-        inputStyle = inputField.getAttribute("style");
-        //Note that a single variable can be associated with multiple values if it's a checkbox
-        inputValues = (List<String>) recSet.get(lookupName);
-        if(inputValues != null){
-          for(String inputValue : inputValues){
-            //echoDebug("Found field name=" + name + "; Type=" + type + "; Value=" + value + "; Class=" + classStr + "; Style=" + style);
-            //Ignore hidden and disabled fields
-            if(inputField.isEnabled() && inputField.isDisplayed()){
-              //Enter text field, unless its value is blank or just a precursor to radio buttons
-              if(inputType.equals("text")  && !classStr.contains("frmrd0") && inputValue != null){
-                inputField.sendKeys(inputValue);
-              }
-              //Click the appropriate radio button
-              else if(inputType.equals("radio")){
-                String attrValue = inputField.getAttribute("value");
-                //echoDebug("Radio button: linked varName=" + lookupName + "; DB value=" + value + "; Tag Value=" + fValue);
-                if(inputValue != null && inputValue.equals(attrValue)){
-                  inputField.click();
-                  //echoDebug("Clicked Radio Button!");
-                }
-              }
-              //Check the appropriate checkbox
-              else if(inputType.equals("checkbox")){
-                String codeStr = inputField.getAttribute("code");
-                //echoDebug("Checkbox: linked varName=" + lookupName + "; DB value=" + value + "; Code=" + codeStr);
-                if(inputValue != null && inputValue.equals(codeStr)){
-                  inputField.click();
-                  //echoDebug("Clicked Checkbox!");
-                }
-              }                       
-            }
-          } // end loop over values associated with this variable name 
-        } // values != null for field name
-      } // end loop over input tags
+      fillDataCell(cell, recIndex);
 
       //See if there is a save button in this cell, indicating that you are at the end of the form
       //If one of the save button dropdown options is used, click the dropdown.
@@ -412,8 +470,10 @@ public static void selectSaveButtonDropdown(String buttonID){
         //There should only be one dropdown per form, but use findElements since it doesn't throw an exception if not found in this cell
         List<WebElement> saveButtonDropdowns = cell.findElements(By.cssSelector("button#submit-btn-dropdown"));        
         for(WebElement saveButtonDropdown : saveButtonDropdowns){
+          markCurrentPage();
           selectSaveButtonDropdown(saveButtonID);
           waitAndHandlePopup(driver,"div.ui-dialog-buttonset button.ui-button","Ignore and leave record");
+          waitForPageReady("saveForm", true);
           return recNum;          
         }
       }
@@ -424,8 +484,10 @@ public static void selectSaveButtonDropdown(String buttonID){
         for(WebElement formButton : formButtons){
           buttonID = formButton.getAttribute("id");
           if(formButton.isDisplayed() && buttonID.equals("submit-btn-saverecord")){
+            markCurrentPage();
             formButton.click();
             waitAndHandlePopup(driver,"div.ui-dialog-buttonset button.ui-button","Ignore and leave record");
+            waitForPageReady("saveForm", true);
             return recNum;
           }
         }
@@ -435,6 +497,77 @@ public static void selectSaveButtonDropdown(String buttonID){
   return recNum;
 } // End of enterForm function 
 
+/**
+ * Enters data into the select, textarea and input elements of a single td.data cell of a data entry form or survey page.
+ * Element names are looked up in the index before reading any other attribute, so elements with no recorded value cost one call.
+ *
+ * @param cell td.data element containing the field's inputs
+ * @param index record values keyed by DOM name, built once per record
+ */
+public static void fillDataCell(WebElement cell, RedcapFieldIndex index){
+    //Loop through any dropdown menus in this cell and select the appropriate option
+    //Select by the recorded value instead of reading every option, which is slow on large dropdowns
+    List<WebElement> selectElements = cell.findElements(By.tagName("select"));
+    for(WebElement selectElement : selectElements){
+      List<String> dbFieldValues = index.getValues(selectElement.getAttribute("name"));
+      if(dbFieldValues != null && selectElement.isEnabled() && selectElement.isDisplayed()){
+          Select selectField = new Select(selectElement);
+          for(String dbFieldValue : dbFieldValues){
+            try {
+              selectField.selectByValue(dbFieldValue);
+              break;
+            }
+            catch(NoSuchElementException e){
+              //echoDebug("No option with value "+dbFieldValue);
+            }
+          }
+      }
+    }
+
+    //Loop through any textarea elements within this data cell and enter them
+    List<WebElement> textAreaElements = cell.findElements(By.tagName("textarea"));
+    for(WebElement textArea:textAreaElements){
+      List<String> textAreaValues = index.getValues(textArea.getAttribute("name"));
+      if(textAreaValues != null && textArea.isEnabled() && textArea.isDisplayed()){
+        textArea.sendKeys(textAreaValues.get(0));
+      }
+    }
+
+    //Loop through all input tags within the data cell and enter them
+    //The index already maps ___radio and __chkn__ names to their variable's values, so no DB-name munging is needed here
+    List<WebElement> inputFields = cell.findElements(By.tagName("input"));
+    for(WebElement inputField : inputFields){
+      String inputName = inputField.getAttribute("name");
+      //Note that a single variable can be associated with multiple values if it's a checkbox
+      List<String> inputValues = index.getValues(inputName);
+      //Ignore fields without values as well as hidden and disabled fields
+      if(inputValues == null || !inputField.isEnabled() || !inputField.isDisplayed()){
+        continue;
+      }
+      String inputType = inputField.getAttribute("type");
+      //Enter text field, unless it's just a precursor to radio buttons
+      if(inputType.equals("text")){
+        if(!inputField.getAttribute("class").contains("frmrd0")){
+          for(String inputValue : inputValues){
+            inputField.sendKeys(inputValue);
+          }
+        }
+      }
+      //Click the appropriate radio button
+      else if(inputType.equals("radio")){
+        if(index.contains(inputName, inputField.getAttribute("value"))){
+          inputField.click();
+        }
+      }
+      //Check the appropriate checkbox
+      else if(inputType.equals("checkbox")){
+        if(index.contains(inputName, inputField.getAttribute("code"))){
+          inputField.click();
+        }
+      }
+    } // end loop over input tags
+}
+
 /**
  * Looks for a matching REDCap log entry based on selection criteria and occuring within a certain number of seconds of the passed in timestamp.
  * Allows partial matches for sqlLog, dataValues, description and changeReason.
@@ -541,13 +674,13 @@ public static Long checkRecentLogEntry(int projectID, int pk, int eventID, Strin
 public static void waitAndHandlePopup(final WebDriver driver, String buttonSelector, String buttonText) {
 
   try{
-    List<WebElement> buttons = new WebDriverWait(driver, 2).until(ExpectedConditions.presenceOfAllElementsLocatedBy(By.cssSelector(buttonSelector)));
+    List<WebElement> buttons = newWait(driver, 2).until(ExpectedConditions.presenceOfAllElementsLocatedBy(By.cssSelector(buttonSelector)));
 
 	for(WebElement button : buttons){
 	  //echoDebug("waitAndHandlePopup button text = " + button.getText());
 	  if(button.getText().equals(buttonText)){
 	    //The button could be detected before it becomes clickable, so add a wait here     
-	    button = new WebDriverWait(driver, 1).until(ExpectedConditions.elementToBeClickable(button));
+	    button = newWait(driver, 1).until(ExpectedConditions.elementToBeClickable(button));
 	    button.click();
 	    return;
 	  }
@@ -558,6 +691,130 @@ public static void waitAndHandlePopup(final WebDriver driver, String buttonSelec
   }
 }
 
+/**
+ * Creates a WebDriverWait that polls at PAGE_READY_POLL_MS instead of the default 500ms
+ *
+ * @param driver current WebDriver browser instance
+ * @param timeoutSec number of seconds to wait before throwing a TimeoutException
+ * @return wait object for use with ExpectedConditions
+ */
+public static WebDriverWait newWait(WebDriver driver, long timeoutSec){
+  return new WebDriverWait(driver, timeoutSec, PAGE_READY_POLL_MS);
+}
+
+/**
+ * Marks the document currently loaded in the browser so that waitForPageReady(stepName, true)
+ * will not mistake it for the next page. Call this just before the click that triggers navigation.
+ */
+public static void markCurrentPage(){
+  markCurrentPage(driver);
+}
+
+/**
+ * Marks the document currently loaded in the specified browser, see markCurrentPage()
+ *
+ * @param driver WebDriver browser instance
+ */
+public static void markCurrentPage(WebDriver driver){
+  ((JavascriptExecutor)driver).executeScript("window.__rcselMark = true;");
+}
+
+/**
+ * Waits until the current page is ready for interaction: document.readyState is complete,
+ * no jQuery ajax requests are active and the DOM has not changed for DOM_QUIET_MS milliseconds.
+ * The timeout adapts to the latencies previously recorded for the same step name.
+ *
+ * @param stepName name used to record latencies and look up the adaptive timeout, e.g. "selectAddNewRecord"
+ * @param newPage true if a navigation was triggered after markCurrentPage(), so the old page must be replaced first
+ * @return number of milliseconds spent waiting
+ */
+public static long waitForPageReady(String stepName, boolean newPage){
+  return waitForPageReady(driver, stepName, newPage);
+}
+
+/**
+ * Waits until the page in the specified browser is ready for interaction, see waitForPageReady(stepName, newPage)
+ *
+ * @param driver WebDriver browser instance
+ * @param stepName name used to record latencies and look up the adaptive timeout
+ * @param newPage true if a navigation was triggered after markCurrentPage(driver)
+ * @return number of milliseconds spent waiting
+ */
+public static long waitForPageReady(WebDriver driver, String stepName, boolean newPage){
+  return waitForPageReady(driver, stepName, newPage, true);
+}
+
+/**
+ * Waits until the page in the specified browser is ready for interaction, see waitForPageReady(stepName, newPage).
+ * Load tests should turn adaptation off: latencies under load vary too much for an adaptive timeout,
+ * so they wait up to PAGE_READY_TIMEOUT and are not recorded for the step.
+ *
+ * @param driver WebDriver browser instance
+ * @param stepName name used to record latencies and look up the adaptive timeout
+ * @param newPage true if a navigation was triggered after markCurrentPage(driver)
+ * @param adaptive false to use the fixed PAGE_READY_TIMEOUT and not record the latency
+ * @return number of milliseconds spent waiting
+ */
+public static long waitForPageReady(final WebDriver driver, String stepName, final boolean newPage, boolean adaptive){
+  long start = System.currentTimeMillis();
+  newWait(driver, adaptive ? getStepTimeout(stepName) : PAGE_READY_TIMEOUT)
+    .ignoring(WebDriverException.class)
+    .until(new ExpectedCondition<Boolean>() {
+      public Boolean apply(WebDriver d) {
+        Object quietMs = ((JavascriptExecutor)d).executeScript(PAGE_READY_JS, newPage);
+        return quietMs instanceof Number && ((Number)quietMs).longValue() >= DOM_QUIET_MS;
+      }
+    });
+  long elapsed = System.currentTimeMillis() - start;
+  if(adaptive){
+    recordStepLatency(stepName, elapsed);
+  }
+  echoDebug("Page ready for step "+stepName+" after "+elapsed+"ms");
+  return elapsed;
+}
+
+/**
+ * Records how long a step took so that later waits for the same step can use an adaptive timeout
+ *
+ * @param stepName name of the step
+ * @param latencyMs number of milliseconds the step took
+ */
+public static void recordStepLatency(String stepName, long latencyMs){
+  synchronized(stepLatencies){
+    List<Long> latencies = stepLatencies.get(stepName);
+    if(latencies == null){
+      stepLatencies.put(stepName, latencies = new ArrayList<Long>());
+    }
+    latencies.add(latencyMs);
+    if(latencies.size() > ADAPTIVE_MAX_SAMPLES){
+      latencies.remove(0);
+    }
+  }
+}
+
+/**
+ * Returns the timeout in seconds for a step.  Steps with fewer than ADAPTIVE_MIN_SAMPLES recorded latencies
+ * use PAGE_READY_TIMEOUT; otherwise the timeout is ADAPTIVE_FACTOR times the p95 latency,
+ * bounded by ADAPTIVE_MIN_TIMEOUT and PAGE_READY_TIMEOUT.
+ *
+ * @param stepName name of the step
+ * @return timeout in seconds
+ */
+public static int getStepTimeout(String stepName){
+  List<Long> sorted;
+  synchronized(stepLatencies){
+    List<Long> latencies = stepLatencies.get(stepName);
+    if(latencies == null || latencies.size() < ADAPTIVE_MIN_SAMPLES){
+      return PAGE_READY_TIMEOUT;
+    }
+    sorted = new ArrayList<Long>(latencies);
+  }
+  Collections.sort(sorted);
+  long p95 = sorted.get((int)Math.ceil(0.95 * sorted.size()) - 1);
+  int timeoutSec = (int)Math.ceil(p95 * ADAPTIVE_FACTOR / 1000.0);
+  return Math.max(ADAPTIVE_MIN_TIMEOUT, Math.min(PAGE_READY_TIMEOUT, timeoutSec));
+}
+
 /**
  * Helper function that returns a value from the redcap database based on sql select query.
  * The function assumes that your query is one that returns a single value only - it returns null if the query returns multiple rows.
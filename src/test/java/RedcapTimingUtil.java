@@ -0,0 +1,386 @@
+package com.github.draju.rcsel;
+
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Collects Navigation/Resource Timing data from the browser so test suites can double as a REDCap performance canary.
+ * Timings are keyed by page and form name, summarized as p95 values and compared against a baseline file.
+ * The baseline keeps a rolling history of samples from the runs it was explicitly updated with, see updateBaseline().
+ * It records the REDCAP_VERSION it was captured on, so regressions after an upgrade are reported against the old version.
+ */
+public class RedcapTimingUtil {
+
+  //Metrics that are gated against the baseline, all in milliseconds
+  //server = time from request sent to first response byte, domReady = DOMContentLoaded, load = load event end
+  public static final String[] GATED_METRICS = {"server", "domReady", "load"};
+
+  //Regressions smaller than this many milliseconds are ignored regardless of percentage, to avoid failing on noise
+  public static long MIN_REGRESSION_MS = 50;
+
+  /** Baseline property holding the REDCAP_VERSION the baseline was captured on */
+  public static final String VERSION_KEY = "redcap_version";
+
+  /** System property that makes a run add its timings to the baseline, e.g. mvn test -Dtiming.updateBaseline=true */
+  public static final String UPDATE_BASELINE_PROPERTY = "timing.updateBaseline";
+
+  //Keys with fewer values than this, in the run or in the baseline, are reported but not gated, since a p95 of a few samples is noise
+  public static int MIN_GATED_SAMPLES = 5;
+
+  //Number of most recent values of each key kept in the baseline
+  public static int MAX_BASELINE_SAMPLES = 100;
+
+  //Map of "page|form|metric" to all values captured during this run
+  private static Map<String, List<Long>> samples = new HashMap<String, List<Long>>();
+
+  //Reads timing of the current document; falls back to the legacy performance.timing API on older browsers
+  private static final String PAGE_TIMING_JS =
+      "var t = {};"
+    + "var nav = performance.getEntriesByType ? performance.getEntriesByType('navigation')[0] : null;"
+    + "if(nav){"
+    + "  t.server = nav.responseStart - nav.requestStart;"
+    + "  t.domReady = nav.domContentLoadedEventEnd - nav.startTime;"
+    + "  t.load = nav.loadEventEnd - nav.startTime;"
+    + "} else {"
+    + "  var p = performance.timing;"
+    + "  t.server = p.responseStart - p.requestStart;"
+    + "  t.domReady = p.domContentLoadedEventEnd - p.navigationStart;"
+    + "  t.load = p.loadEventEnd - p.navigationStart;"
+    + "}"
+    + "var res = performance.getEntriesByType ? performance.getEntriesByType('resource') : [];"
+    + "var lastEnd = 0;"
+    + "for(var i = 0; i < res.length; i++){ lastEnd = Math.max(lastEnd, res[i].responseEnd); }"
+    + "t.resources = res.length;"
+    + "t.resourceEnd = lastEnd;"
+    + "return t;";
+
+  /**
+   * Captures timing of the page currently loaded in the default browser, see capturePageTiming(driver, pageName, formName)
+   *
+   * @param pageName type of page just navigated to, e.g. "projectPage", "recordHome", "dataEntryForm", "saveForm"
+   * @param formName name of the data entry form, or an empty string if the page is not tied to a form
+   * @return map of metric name to value in milliseconds (resources is a count)
+   */
+  public static Map<String, Long> capturePageTiming(String pageName, String formName){
+    return capturePageTiming(RedcapTestUtil.driver, pageName, formName);
+  }
+
+  /**
+   * Captures Navigation/Resource Timing for the page currently loaded in the browser and stores it for this run.
+   * Should be called once the page is ready, e.g. after RedcapTestUtil.waitForPageReady(stepName, true).
+   *
+   * @param driver WebDriver browser instance
+   * @param pageName type of page just navigated to, e.g. "projectPage", "recordHome", "dataEntryForm", "saveForm"
+   * @param formName name of the data entry form, or an empty string if the page is not tied to a form
+   * @return map of metric name to value in milliseconds (resources is a count)
+   */
+  public static Map<String, Long> capturePageTiming(WebDriver driver, String pageName, String formName){
+    Map<String, Long> timing = new TreeMap<String, Long>();
+    Object result = ((JavascriptExecutor)driver).executeScript(PAGE_TIMING_JS);
+    if(!(result instanceof Map)){
+      RedcapTestUtil.echoDebug("No timing data available for page "+pageName);
+      return timing;
+    }
+    Map<?, ?> values = (Map<?, ?>) result;
+    for(Map.Entry<?, ?> entry : values.entrySet()){
+      if(entry.getValue() instanceof Number){
+        long value = Math.round(((Number)entry.getValue()).doubleValue());
+        timing.put(entry.getKey().toString(), value);
+        addSample(getTimingKey(pageName, formName, entry.getKey().toString()), value);
+      }
+    }
+    RedcapTestUtil.echoDebug("Page timing for "+pageName+" ["+formName+"]: "+timing);
+    return timing;
+  }
+
+  /**
+   * Builds the key that timings are stored under.  The REDCap version is left out so timings stay comparable across upgrades.
+   *
+   * @param pageName type of page
+   * @param formName name of the data entry form or an empty string
+   * @param metric name of the timing metric
+   * @return key of the form "page|form|metric"
+   */
+  public static String getTimingKey(String pageName, String formName, String metric){
+    return pageName+"|"+formName+"|"+metric;
+  }
+
+  /**
+   * Stores a single timing value for this run
+   *
+   * @param key key built by getTimingKey()
+   * @param value timing value in milliseconds
+   */
+  public static void addSample(String key, long value){
+    synchronized(samples){
+      List<Long> values = samples.get(key);
+      if(values == null){
+        samples.put(key, values = new ArrayList<Long>());
+      }
+      values.add(value);
+    }
+  }
+
+  /**
+   * Summarizes the timings captured during this run as the 95th percentile for each key
+   *
+   * @return map of key to p95 value in milliseconds, sorted by key
+   */
+  public static Map<String, Long> getP95Timings(){
+    Map<String, Long> p95s = new TreeMap<String, Long>();
+    synchronized(samples){
+      for(Map.Entry<String, List<Long>> entry : samples.entrySet()){
+        p95s.put(entry.getKey(), percentile(entry.getValue(), 95));
+      }
+    }
+    return p95s;
+  }
+
+  /**
+   * Returns the nearest-rank percentile of a list of values
+   *
+   * @param values list of values, which is not modified
+   * @param pct percentile to return, between 1 and 100
+   * @return value at the requested percentile or -1 if the list is empty
+   */
+  public static long percentile(List<Long> values, int pct){
+    if(values == null || values.isEmpty()){
+      return -1;
+    }
+    List<Long> sorted = new ArrayList<Long>(values);
+    Collections.sort(sorted);
+    int rank = (int)Math.ceil(pct / 100.0 * sorted.size());
+    return sorted.get(Math.max(rank, 1) - 1);
+  }
+
+  /**
+   * Writes the p95 timings captured during this run to a properties file, tagged with REDCAP_VERSION
+   *
+   * @param path location of the file to write
+   */
+  public static void saveTimings(String path){
+    Properties props = new Properties();
+    for(Map.Entry<String, Long> entry : getP95Timings().entrySet()){
+      props.setProperty(entry.getKey(), ""+entry.getValue());
+    }
+    props.setProperty(VERSION_KEY, RedcapTestUtil.REDCAP_VERSION);
+    File file = new File(path);
+    if(file.getParentFile() != null){
+      file.getParentFile().mkdirs();
+    }
+    OutputStream out = null;
+    try {
+      out = new FileOutputStream(file);
+      props.store(out, "p95 REDCap page timings in milliseconds");
+    }
+    catch (IOException ex) {
+      System.out.println("IOException writing timings to "+path+": " + ex.getMessage());
+    }
+    finally {
+      if (out != null) try { out.close(); } catch(Exception e) {}
+    }
+  }
+
+  /**
+   * @return true if the run was started with -Dtiming.updateBaseline=true, i.e. its timings should be added to the baseline
+   */
+  public static boolean isBaselineUpdate(){
+    return Boolean.getBoolean(UPDATE_BASELINE_PROPERTY);
+  }
+
+  /**
+   * Adds the timings captured during this run to the baseline, keeping the last MAX_BASELINE_SAMPLES values of each key.
+   * The baseline keeps raw values rather than p95s so its own p95s are based on enough samples.
+   * A baseline of another REDCAP_VERSION is replaced instead of added to, so versions are never mixed in one baseline.
+   *
+   * @param baselinePath location of the baseline properties file, created if it does not exist
+   */
+  public static void updateBaseline(String baselinePath){
+    Properties baseline = new Properties();
+    if(new File(baselinePath).exists()){
+      try {
+        baseline = loadBaseline(baselinePath);
+      }
+      catch (IOException ex) {
+        System.out.println("IOException reading timing baseline "+baselinePath+", replacing it: " + ex.getMessage());
+      }
+    }
+    if(!RedcapTestUtil.REDCAP_VERSION.equals(baseline.getProperty(VERSION_KEY))){
+      baseline.clear();
+    }
+
+    Properties props = new Properties();
+    for(Map.Entry<String, List<Long>> entry : getSamples().entrySet()){
+      List<Long> values = parseSamples(baseline.getProperty(entry.getKey()));
+      values.addAll(entry.getValue());
+      if(values.size() > MAX_BASELINE_SAMPLES){
+        values = values.subList(values.size() - MAX_BASELINE_SAMPLES, values.size());
+      }
+      StringBuilder joined = new StringBuilder();
+      for(Long value : values){
+        joined.append(joined.length() == 0 ? "" : ",").append(value);
+      }
+      props.setProperty(entry.getKey(), joined.toString());
+    }
+    //Keep baseline keys that this run did not capture
+    for(String key : baseline.stringPropertyNames()){
+      if(props.getProperty(key) == null){
+        props.setProperty(key, baseline.getProperty(key));
+      }
+    }
+    props.setProperty(VERSION_KEY, RedcapTestUtil.REDCAP_VERSION);
+
+    File file = new File(baselinePath);
+    if(file.getParentFile() != null){
+      file.getParentFile().mkdirs();
+    }
+    OutputStream out = null;
+    try {
+      out = new FileOutputStream(file);
+      props.store(out, "REDCap page timing samples in milliseconds, most recent last");
+      System.out.println("Timing baseline updated: "+baselinePath);
+    }
+    catch (IOException ex) {
+      System.out.println("IOException writing timing baseline "+baselinePath+": " + ex.getMessage());
+    }
+    finally {
+      if (out != null) try { out.close(); } catch(Exception e) {}
+    }
+  }
+
+  /**
+   * Compares the p95 timings of this run against the p95s of the samples stored in a baseline.
+   * Only the GATED_METRICS are compared, for keys with at least MIN_GATED_SAMPLES values in both this run and the baseline.
+   * A missing or unreadable baseline, or one that shares no gated timings with this run, is reported as a failure;
+   * the baseline is only ever written by updateBaseline().
+   *
+   * @param baselinePath location of the baseline properties file
+   * @param thresholdPct allowed increase over the baseline in percent, e.g. 20 for 20%
+   * @return list of descriptions of the timings that regressed or of the baseline problem, empty if none
+   */
+  public static List<String> checkTimingRegressions(String baselinePath, double thresholdPct){
+    List<String> regressions = new ArrayList<String>();
+    if(!new File(baselinePath).exists()){
+      regressions.add("No timing baseline found at "+baselinePath+"; run with -D"+UPDATE_BASELINE_PROPERTY+"=true to record one");
+      return regressions;
+    }
+
+    Properties baseline;
+    try {
+      baseline = loadBaseline(baselinePath);
+    }
+    catch (IOException ex) {
+      System.out.println("IOException reading timing baseline "+baselinePath+": " + ex.getMessage());
+      regressions.add("Timing baseline "+baselinePath+" could not be read");
+      return regressions;
+    }
+
+    String baseVersion = baseline.getProperty(VERSION_KEY, "unknown version");
+    String versions = RedcapTestUtil.REDCAP_VERSION.equals(baseVersion) ? RedcapTestUtil.REDCAP_VERSION
+                    : RedcapTestUtil.REDCAP_VERSION+" vs baseline "+baseVersion;
+    if(!RedcapTestUtil.REDCAP_VERSION.equals(baseVersion)){
+      System.out.println("Comparing timings of "+versions);
+    }
+
+    int compared = 0;
+    for(Map.Entry<String, List<Long>> entry : getSamples().entrySet()){
+      String key = entry.getKey();
+      if(!isGatedMetric(key) || baseline.getProperty(key) == null){
+        continue;
+      }
+      List<Long> baseValues = parseSamples(baseline.getProperty(key));
+      if(entry.getValue().size() < MIN_GATED_SAMPLES || baseValues.size() < MIN_GATED_SAMPLES){
+        System.out.println("Timing "+key+" not gated: "+entry.getValue().size()+" samples in this run, "
+          +baseValues.size()+" in baseline, need "+MIN_GATED_SAMPLES);
+        continue;
+      }
+      compared++;
+      long baseValue = percentile(baseValues, 95);
+      long value = percentile(entry.getValue(), 95);
+      long limit = Math.max(Math.round(baseValue * (1 + thresholdPct / 100.0)), baseValue + MIN_REGRESSION_MS);
+      RedcapTestUtil.echoDebug("Timing "+key+": p95="+value+"ms; baseline="+baseValue+"ms; limit="+limit+"ms");
+      if(value > limit){
+        regressions.add(key+" p95 "+value+"ms exceeds baseline "+baseValue+"ms by more than "+thresholdPct+"% ("+versions+")");
+      }
+    }
+    if(compared == 0){
+      regressions.add("No gated timings of this run match baseline "+baselinePath+" with at least "+MIN_GATED_SAMPLES+" samples ("+versions
+        +"); run with -D"+UPDATE_BASELINE_PROPERTY+"=true to update it");
+    }
+    return regressions;
+  }
+
+  /**
+   * Clears all timings captured so far
+   */
+  public static void resetTimings(){
+    synchronized(samples){
+      samples.clear();
+    }
+  }
+
+  //Copy of all samples captured so far, sorted by key
+  private static Map<String, List<Long>> getSamples(){
+    Map<String, List<Long>> copy = new TreeMap<String, List<Long>>();
+    synchronized(samples){
+      for(Map.Entry<String, List<Long>> entry : samples.entrySet()){
+        copy.put(entry.getKey(), new ArrayList<Long>(entry.getValue()));
+      }
+    }
+    return copy;
+  }
+
+  private static Properties loadBaseline(String baselinePath) throws IOException {
+    Properties baseline = new Properties();
+    InputStream in = new FileInputStream(baselinePath);
+    try {
+      baseline.load(in);
+    }
+    finally {
+      in.close();
+    }
+    return baseline;
+  }
+
+  //Parses a comma-separated list of baseline samples; values that are not numbers are skipped
+  private static List<Long> parseSamples(String joined){
+    List<Long> values = new ArrayList<Long>();
+    if(joined == null){
+      return values;
+    }
+    for(String value : joined.split(",")){
+      try {
+        values.add(Long.parseLong(value.trim()));
+      }
+      catch (NumberFormatException ex) {
+        RedcapTestUtil.echoDebug("Skipping baseline sample '"+value+"'");
+      }
+    }
+    return values;
+  }
+
+  private static boolean isGatedMetric(String key){
+    for(String metric : GATED_METRICS){
+      if(key.endsWith("|"+metric)){
+        return true;
+      }
+    }
+    return false;
+  }
+
+} // End of Class RedcapTimingUtil
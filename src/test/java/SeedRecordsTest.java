@@ -0,0 +1,81 @@
+import com.github.draju.rcsel.RedcapSeedUtil;
+import com.github.draju.rcsel.RedcapTestUtil;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterSuite;
+import org.testng.annotations.AfterTest;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Parameters;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+
+/**
+ * Test seeding of fixture records directly in the REDCap database.
+ */
+public class SeedRecordsTest {
+
+  private static int seedPID = -1;
+  private static List<Integer> newRecords = new ArrayList<Integer>();
+
+  /**
+   * Opens a connection to REDCap database
+   */
+  @BeforeTest
+  public void openDatabase(){
+    System.out.println("=========== Running tests for "+this.getClass().getSimpleName());
+    RedcapTestUtil.initializeDB();
+  } 
+
+  /**
+   * Clones the source record into new records and checks each one has the same data rows with its own record ID
+   */
+  @Parameters({ "pid", "orig_record", "num_records" })
+  @Test(priority = 0)
+  public void verifySeedRecords(int pid, int orig_record, int num_records){
+
+    System.out.println("----------- Executing verifySeedRecords");
+
+    long start = System.currentTimeMillis();
+    seedPID = pid;
+    newRecords = RedcapSeedUtil.seedRecords(pid, orig_record, num_records);
+    System.out.println("Seeded "+newRecords.size()+" records in "+(System.currentTimeMillis() - start)+"ms");
+    Assert.assertEquals(newRecords.size(), num_records);
+
+    String countSQL = "SELECT count(*) from redcap_data where project_id='"+pid+"' and record='";
+    String origCount = RedcapTestUtil.getDBvalue(countSQL+orig_record+"'");
+    Assert.assertEquals(RedcapTestUtil.getDBvalue(countSQL+newRecords.get(0)+"'"), origCount);
+    Assert.assertEquals(RedcapTestUtil.getDBvalue(countSQL+newRecords.get(newRecords.size() - 1)+"'"), origCount);
+
+    //Every clone's record ID field must hold its new record ID, not the source record's
+    String pkField = RedcapTestUtil.getDBvalue("SELECT field_name from redcap_metadata where project_id='"+pid+"' order by field_order limit 1");
+    int origPkRows = Integer.parseInt(RedcapTestUtil.getDBvalue(countSQL+orig_record+"' and field_name='"+pkField+"'"));
+    String seededRange = "SELECT count(*) from redcap_data where project_id='"+pid+"' and field_name='"+pkField+"'"
+                       + " and cast(record as unsigned) between "+newRecords.get(0)+" and "+newRecords.get(newRecords.size() - 1);
+    Assert.assertEquals(RedcapTestUtil.getDBvalue(seededRange+" and value = record"), ""+(origPkRows * num_records));
+    Assert.assertEquals(RedcapTestUtil.getDBvalue(seededRange+" and value <> record"), "0");
+  }
+
+  /**
+   * Deletes the seeded records so the project is left as it was
+   */
+  @AfterTest
+  public void deleteSeededRecords(){
+    if(!newRecords.isEmpty()){
+      int deleted = RedcapSeedUtil.deleteRecords(seedPID, newRecords);
+      System.out.println("Deleted "+newRecords.size()+" seeded records ("+deleted+" rows)");
+      newRecords.clear();
+    }
+  }
+
+  /**
+   * Closes the database connection
+   */
+  @AfterSuite
+  public void closeDB(){
+    RedcapTestUtil.closeDB();
+  }
+}
@@ -0,0 +1,52 @@
+import com.github.draju.rcsel.RedcapSurveyUtil;
+import com.github.draju.rcsel.RedcapTestUtil;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterSuite;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Parameters;
+import org.testng.annotations.Test;
+
+
+
+/**
+ * Test REDCap public survey submission under load, without logging in.
+ */
+public class SurveyThroughputTest {
+
+  /**
+   * Opens a connection to REDCap database
+   */
+  @BeforeTest
+  public void openDatabase(){
+    System.out.println("=========== Running tests for "+this.getClass().getSimpleName());
+    RedcapTestUtil.initializeDB();
+  } 
+
+  /**
+   * Submits the public survey many times at once, re-entering data from an existing record
+   */
+  @Parameters({ "pid", "orig_record", "event_id", "survey_form_name", "num_surveys", "max_concurrent" })
+  @Test(priority = 0)
+  public void verifySurveyThroughput(int pid, int orig_record, int event_id, String survey_form_name, int num_surveys, int max_concurrent){
+
+    System.out.println("----------- Executing verifySurveyThroughput");
+
+    RedcapSurveyUtil.SurveyReport report = RedcapSurveyUtil.runSurveys(pid, orig_record, event_id, survey_form_name, num_surveys, max_concurrent);
+    for(RedcapSurveyUtil.SurveyResult result : report.results){
+      if(result.error != null){
+        System.out.println("Survey failed: "+result.error);
+      }
+    }
+    System.out.println("Survey run: "+report);
+    Assert.assertEquals(report.completed, num_surveys);
+  }
+
+  /**
+   * Closes the database connection
+   */
+  @AfterSuite
+  public void closeDB(){
+    RedcapTestUtil.closeDB();
+  }
+}